@@ -0,0 +1,398 @@
+package io.github.cottonmc.mcdict;
+
+import blue.endless.jankson.*;
+import blue.endless.jankson.api.SyntaxError;
+import com.google.common.io.ByteStreams;
+import io.github.cottonmc.mcdict.api.Dict;
+import io.github.cottonmc.mcdict.api.SimpleDict;
+import io.github.cottonmc.mcdict.api.ValueDecoders;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.InvalidIdentifierException;
+
+import javax.annotation.Nullable;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * A binary alternative to JSON5 dict files, for large generated dicts. Files are read in one go and decoded straight
+ * into typed values and registered objects, and follow all the same stacking, "replace" and "override" rules as JSON5.
+ * <p>
+ * All numbers are big-endian, and strings are an int byte length followed by UTF-8 bytes.
+ * <pre>
+ * int     magic, "MCDB"
+ * byte    format version, currently 1
+ * byte    flags: 1 for "replace", 2 for "override", 4 if there's a default value
+ * byte    value kind, one of the KIND_ constants; every value and the default use this kind
+ * int     fallback count
+ *         per fallback: string dict ID
+ * int     namespace count
+ *         per namespace: string
+ * int     entry count
+ *         per entry: boolean whether the key is a tag, int index into the namespaces, string path
+ *         values: for {@link #KIND_JSON}, one string of JSON5 text holding an object whose "values" array has every
+ *         entry's value in order and then the default; otherwise every entry's value in order and then the default
+ * </pre>
+ * Values are a boolean, int, long or double, or a string.
+ */
+public class BinaryDictFormat {
+	public static final String EXTENSION = ".mcdict";
+
+	private static final int MAGIC = 0x4D434442;
+	private static final int VERSION = 1;
+	private static final int FLAG_REPLACE = 1;
+	private static final int FLAG_OVERRIDE = 2;
+	private static final int FLAG_DEFAULT = 4;
+
+	public static final byte KIND_BOOLEAN = 0;
+	public static final byte KIND_INT = 1;
+	public static final byte KIND_LONG = 2;
+	public static final byte KIND_DOUBLE = 3;
+	public static final byte KIND_STRING = 4;
+	public static final byte KIND_JSON = 5;
+
+	/**
+	 * Read a binary dict file for a dict.
+	 * @param jankson The Jankson instance to parse the {@link #KIND_JSON} value blob with.
+	 * @param dict The dict this file is for, which decides the value type and the registry keys are looked up in.
+	 * @param stream The stream to read the whole file from. Not closed.
+	 * @param <T> The type of registered object the dict is for.
+	 * @param <V> The type of value the dict stores.
+	 * @return The decoded dict file.
+	 * @throws IOException If the stream can't be read or the file is truncated.
+	 * @throws SyntaxError If the file isn't a binary dict, or an entry or value is malformed.
+	 */
+	public static <T, V> DictFile read(Jankson jankson, SimpleDict<T, V> dict, InputStream stream) throws IOException, SyntaxError {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(ByteStreams.toByteArray(stream)));
+		if (in.readInt() != MAGIC) throw new SyntaxError("Not a binary dict file");
+		int version = in.readUnsignedByte();
+		if (version != VERSION) throw new SyntaxError("Unsupported binary dict version " + version);
+		int flags = in.readUnsignedByte();
+		byte kind = in.readByte();
+		boolean hasDefault = (flags & FLAG_DEFAULT) != 0;
+
+		JsonArray fallbackIds = new JsonArray();
+		int fallbackCount = readCount(in, 4, "fallback");
+		for (int i = 0; i < fallbackCount; i++) {
+			fallbackIds.add(new JsonPrimitive(readString(in)));
+		}
+
+		String[] namespaces = new String[readCount(in, 4, "namespace")];
+		for (int i = 0; i < namespaces.length; i++) {
+			namespaces[i] = readString(in);
+		}
+
+		//Resolve every key up front, so applying the file is just map merges
+		int count = readCount(in, 9, "entry");
+		List<T> keys = new ArrayList<>(count);
+		List<Identifier> tagKeys = new ArrayList<>();
+		boolean[] isTag = new boolean[count];
+		for (int i = 0; i < count; i++) {
+			isTag[i] = in.readBoolean();
+			int namespace = in.readInt();
+			if (namespace < 0 || namespace >= namespaces.length) throw new SyntaxError("Dict entry " + i + " has an invalid namespace index");
+			String path = readString(in);
+			Identifier id;
+			try {
+				id = new Identifier(namespaces[namespace], path);
+			} catch (InvalidIdentifierException e) {
+				throw new SyntaxError("Dict entry " + namespaces[namespace] + ":" + path + " is not a valid ID");
+			}
+			if (isTag[i]) {
+				tagKeys.add(id);
+			} else {
+				//Objects from mods that aren't installed are skipped, so the rest of the file still applies
+				Optional<T> entry = dict.getRegistry().getOrEmpty(id);
+				if (!entry.isPresent()) {
+					MCDict.logger.error("[MCDict] Dict {} references registered object {} that does not exist, skipping it", dict.getId().toString(), id.toString());
+				}
+				keys.add(entry.orElse(null));
+			}
+		}
+
+		Class<V> type = dict.getType();
+		ValueDecoders.Decoder<V> decoder = ValueDecoders.get(type);
+		Map<T, V> entries = new HashMap<>(Math.max(16, keys.size() * 4 / 3 + 1));
+		Map<Identifier, V> tagEntries = new LinkedHashMap<>();
+		JsonElement defaultElem = null;
+		if (kind == KIND_JSON) {
+			//One parse for the whole file, rather than one per value
+			JsonElement blob = jankson.load(readString(in)).get("values");
+			if (!(blob instanceof JsonArray) || ((JsonArray) blob).size() != count + (hasDefault ? 1 : 0)) {
+				throw new SyntaxError("Binary dict value blob doesn't match its entries");
+			}
+			JsonArray values = (JsonArray) blob;
+			int keyIndex = 0;
+			int tagIndex = 0;
+			for (int i = 0; i < count; i++) {
+				V value = decode(decoder, values.get(i), type);
+				if (isTag[i]) tagEntries.put(tagKeys.get(tagIndex++), value);
+				else putEntry(entries, keys.get(keyIndex++), value);
+			}
+			if (hasDefault) defaultElem = values.get(count);
+		} else {
+			int keyIndex = 0;
+			int tagIndex = 0;
+			for (int i = 0; i < count; i++) {
+				V value = convert(readValue(in, kind), type, decoder);
+				if (isTag[i]) tagEntries.put(tagKeys.get(tagIndex++), value);
+				else putEntry(entries, keys.get(keyIndex++), value);
+			}
+			if (hasDefault) defaultElem = new JsonPrimitive(readValue(in, kind));
+		}
+
+		JsonObject fallbacks = null;
+		if (fallbackCount > 0 || hasDefault) {
+			fallbacks = new JsonObject();
+			if (fallbackCount > 0) fallbacks.put("fallback", fallbackIds);
+			if (hasDefault) fallbacks.put("default", defaultElem);
+		}
+		return new Decoded<>((flags & FLAG_REPLACE) != 0, (flags & FLAG_OVERRIDE) != 0, fallbacks, entries, tagEntries);
+	}
+
+	/**
+	 * Write a dict file in binary form.
+	 * @param json A JsonObject laid out the same as a JSON5 dict file.
+	 * @param stream The stream to write to. Not closed.
+	 * @throws IOException If the stream can't be written to.
+	 */
+	public static void write(JsonObject json, OutputStream stream) throws IOException {
+		JsonObject values = json.getObject("values");
+		if (values == null) values = new JsonObject();
+		JsonElement defaultValue = json.get("default");
+		byte kind = pickKind(values, defaultValue);
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+		out.writeInt(MAGIC);
+		out.writeByte(VERSION);
+		int flags = 0;
+		if (json.getBoolean("replace", false)) flags |= FLAG_REPLACE;
+		if (json.getBoolean("override", false)) flags |= FLAG_OVERRIDE;
+		if (defaultValue != null) flags |= FLAG_DEFAULT;
+		out.writeByte(flags);
+		out.writeByte(kind);
+
+		JsonElement fallback = json.get("fallback");
+		if (fallback instanceof JsonArray) {
+			JsonArray fallbacks = (JsonArray) fallback;
+			out.writeInt(fallbacks.size());
+			for (JsonElement elem : fallbacks) {
+				writeString(out, ((JsonPrimitive) elem).asString());
+			}
+		} else if (fallback instanceof JsonPrimitive) {
+			out.writeInt(1);
+			writeString(out, ((JsonPrimitive) fallback).asString());
+		} else {
+			out.writeInt(0);
+		}
+
+		//Keys are split here the same way Identifier does, so the converter doesn't need Minecraft classes
+		Map<String, Integer> namespaces = new LinkedHashMap<>();
+		List<String> keys = new ArrayList<>(values.keySet());
+		for (String key : keys) {
+			namespaces.putIfAbsent(namespace(key), namespaces.size());
+		}
+		out.writeInt(namespaces.size());
+		for (String namespace : namespaces.keySet()) {
+			writeString(out, namespace);
+		}
+		out.writeInt(keys.size());
+		for (String key : keys) {
+			boolean tag = key.indexOf('#') == 0;
+			String id = tag ? key.substring(1) : key;
+			int colon = id.indexOf(':');
+			out.writeBoolean(tag);
+			out.writeInt(namespaces.get(namespace(key)));
+			writeString(out, colon >= 0 ? id.substring(colon + 1) : id);
+		}
+
+		if (kind == KIND_JSON) {
+			JsonArray blob = new JsonArray();
+			for (String key : keys) {
+				blob.add(values.get(key));
+			}
+			if (defaultValue != null) blob.add(defaultValue);
+			JsonObject wrapper = new JsonObject();
+			wrapper.put("values", blob);
+			writeString(out, wrapper.toJson(false, false));
+		} else {
+			for (String key : keys) {
+				writeValue(out, values.get(key), kind);
+			}
+			if (defaultValue != null) writeValue(out, defaultValue, kind);
+		}
+		out.flush();
+	}
+
+	/**
+	 * Convert a JSON5 dict file to a binary dict file.
+	 * @param jankson The Jankson instance to parse the JSON5 file with.
+	 * @param from The JSON5 dict file to read.
+	 * @param to The binary dict file to write.
+	 * @throws IOException If either file can't be accessed.
+	 * @throws SyntaxError If the JSON5 file is malformed.
+	 */
+	public static void convert(Jankson jankson, Path from, Path to) throws IOException, SyntaxError {
+		JsonObject json;
+		try (InputStream in = Files.newInputStream(from)) {
+			json = jankson.load(in);
+		}
+		try (OutputStream out = Files.newOutputStream(to)) {
+			write(json, out);
+		}
+	}
+
+	/**
+	 * Command-line converter. Takes any number of JSON5 dict files, and writes each one next to itself as a binary dict file.
+	 */
+	public static void main(String[] args) throws IOException, SyntaxError {
+		Jankson jankson = Jankson.builder().build();
+		for (String arg : args) {
+			Path from = Paths.get(arg);
+			String name = from.getFileName().toString();
+			if (name.endsWith(".json5")) name = name.substring(0, name.length() - ".json5".length());
+			Path to = from.resolveSibling(name + EXTENSION);
+			convert(jankson, from, to);
+			System.out.println("Converted " + from + " to " + to);
+		}
+	}
+
+	private static String namespace(String key) {
+		String id = key.indexOf('#') == 0 ? key.substring(1) : key;
+		int colon = id.indexOf(':');
+		return colon >= 0 ? id.substring(0, colon) : "minecraft";
+	}
+
+	//Use the narrowest kind that fits every value, falling back to JSON text for anything that isn't a primitive
+	private static byte pickKind(JsonObject values, JsonElement defaultValue) {
+		List<JsonElement> elems = new ArrayList<>(values.values());
+		if (defaultValue != null) elems.add(defaultValue);
+		boolean allBoolean = true;
+		boolean allInt = true;
+		boolean allLong = true;
+		boolean allNumber = true;
+		boolean allString = true;
+		for (JsonElement elem : elems) {
+			if (!(elem instanceof JsonPrimitive)) return KIND_JSON;
+			Object value = ((JsonPrimitive) elem).getValue();
+			boolean integral = value instanceof Long || value instanceof Integer;
+			allBoolean &= value instanceof Boolean;
+			allLong &= integral;
+			allInt &= integral && ((Number) value).longValue() == ((Number) value).intValue();
+			allNumber &= value instanceof Number;
+			allString &= value instanceof String;
+		}
+		if (allBoolean) return KIND_BOOLEAN;
+		if (allInt) return KIND_INT;
+		if (allLong) return KIND_LONG;
+		if (allNumber) return KIND_DOUBLE;
+		if (allString) return KIND_STRING;
+		return KIND_JSON;
+	}
+
+	private static Object readValue(DataInputStream in, byte kind) throws IOException, SyntaxError {
+		switch (kind) {
+			case KIND_BOOLEAN:
+				return in.readBoolean();
+			case KIND_INT:
+				return in.readInt();
+			case KIND_LONG:
+				return in.readLong();
+			case KIND_DOUBLE:
+				return in.readDouble();
+			case KIND_STRING:
+				return readString(in);
+			default:
+				throw new SyntaxError("Unknown binary dict value kind " + kind);
+		}
+	}
+
+	//Values that are already the right type (or a number of another width) skip the decoder entirely
+	@SuppressWarnings("unchecked")
+	private static <V> V convert(Object raw, Class<V> type, ValueDecoders.Decoder<V> decoder) throws SyntaxError {
+		if (type.isInstance(raw)) return (V) raw;
+		if (raw instanceof Number) {
+			Number number = (Number) raw;
+			if (type == Integer.class) return (V) Integer.valueOf(number.intValue());
+			if (type == Long.class) return (V) Long.valueOf(number.longValue());
+			if (type == Short.class) return (V) Short.valueOf(number.shortValue());
+			if (type == Byte.class) return (V) Byte.valueOf(number.byteValue());
+			if (type == Float.class) return (V) Float.valueOf(number.floatValue());
+			if (type == Double.class) return (V) Double.valueOf(number.doubleValue());
+		}
+		return decode(decoder, new JsonPrimitive(raw), type);
+	}
+
+	private static <T, V> void putEntry(Map<T, V> entries, @Nullable T key, V value) {
+		if (key != null) entries.put(key, value);
+	}
+
+	private static <V> V decode(ValueDecoders.Decoder<V> decoder, JsonElement elem, Class<V> type) throws SyntaxError {
+		V value = decoder.decode(elem);
+		if (value == null) throw new SyntaxError("Dict value " + elem.toJson(false, false) + " could not be parsed into type " + type.getName());
+		return value;
+	}
+
+	private static void writeValue(DataOutputStream out, JsonElement elem, byte kind) throws IOException {
+		switch (kind) {
+			case KIND_BOOLEAN:
+				out.writeBoolean((Boolean) ((JsonPrimitive) elem).getValue());
+				break;
+			case KIND_INT:
+				out.writeInt(((Number) ((JsonPrimitive) elem).getValue()).intValue());
+				break;
+			case KIND_LONG:
+				out.writeLong(((Number) ((JsonPrimitive) elem).getValue()).longValue());
+				break;
+			case KIND_DOUBLE:
+				out.writeDouble(((Number) ((JsonPrimitive) elem).getValue()).doubleValue());
+				break;
+			default:
+				writeString(out, ((JsonPrimitive) elem).asString());
+				break;
+		}
+	}
+
+	//Counts and lengths come from the file, so they're checked against what's left before anything is allocated for them
+	private static int readCount(DataInputStream in, int minBytesEach, String what) throws IOException, SyntaxError {
+		int count = in.readInt();
+		if (count < 0 || (long) count * minBytesEach > in.available()) throw new SyntaxError("Binary dict " + what + " count " + count + " doesn't fit in the file");
+		return count;
+	}
+
+	private static String readString(DataInputStream in) throws IOException, SyntaxError {
+		byte[] bytes = new byte[readCount(in, 1, "string byte")];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static void writeString(DataOutputStream out, String string) throws IOException {
+		byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * A binary dict file with its keys resolved and values decoded, ready to merge into a dict.
+	 */
+	private static class Decoded<T, V> extends DictFile {
+		private final Map<T, V> entries;
+		private final Map<Identifier, V> tagEntries;
+
+		private Decoded(boolean replace, boolean override, JsonObject fallbacks, Map<T, V> entries, Map<Identifier, V> tagEntries) {
+			super(replace, override, fallbacks);
+			this.entries = entries;
+			this.tagEntries = tagEntries;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public void applyTo(Dict<?, ?> dict) throws SyntaxError {
+			if (!(dict instanceof SimpleDict)) throw new SyntaxError("Binary dict files can only be applied to SimpleDicts");
+			((SimpleDict<T, V>) dict).fromEntries(isReplace(), isOverride(), entries, tagEntries);
+		}
+	}
+}
@@ -0,0 +1,77 @@
+package io.github.cottonmc.mcdict;
+
+import blue.endless.jankson.JsonObject;
+import blue.endless.jankson.api.SyntaxError;
+import io.github.cottonmc.mcdict.api.Dict;
+
+import javax.annotation.Nullable;
+
+/**
+ * A single dict file that's been read and decoded, waiting to be applied to a dict in stacking order.
+ */
+public abstract class DictFile {
+	private final boolean replace;
+	private final boolean override;
+	@Nullable
+	private final JsonObject fallbacks;
+
+	protected DictFile(boolean replace, boolean override, @Nullable JsonObject fallbacks) {
+		this.replace = replace;
+		this.override = override;
+		this.fallbacks = fallbacks;
+	}
+
+	/**
+	 * Wrap a dict file parsed from JSON5.
+	 * @param json The whole dict file.
+	 * @return The dict file, which applies its values through {@link Dict#fromJson(boolean, boolean, JsonObject)}.
+	 */
+	public static DictFile fromJson(JsonObject json) {
+		return new Json(json);
+	}
+
+	/**
+	 * @return Whether the dict should be cleared before this file is applied.
+	 */
+	public boolean isReplace() {
+		return replace;
+	}
+
+	/**
+	 * @return Whether this file should override existing values for the same entry.
+	 */
+	public boolean isOverride() {
+		return override;
+	}
+
+	/**
+	 * @return An object with this file's "fallback" and "default" keys, or null if it declares neither.
+	 */
+	@Nullable
+	public JsonObject getFallbacks() {
+		return fallbacks;
+	}
+
+	/**
+	 * Apply this file's values to a dict.
+	 * @param dict The dict this file was loaded for, or a snapshot of it.
+	 * @throws SyntaxError If an entry is malformed.
+	 */
+	public abstract void applyTo(Dict<?, ?> dict) throws SyntaxError;
+
+	private static class Json extends DictFile {
+		@Nullable
+		private final JsonObject values;
+
+		private Json(JsonObject json) {
+			super(json.getBoolean("replace", false), json.getBoolean("override", false),
+					json.containsKey("fallback") || json.containsKey("default") ? json : null);
+			this.values = json.getObject("values");
+		}
+
+		@Override
+		public void applyTo(Dict<?, ?> dict) throws SyntaxError {
+			dict.fromJson(isReplace(), isOverride(), values != null ? values : new JsonObject());
+		}
+	}
+}
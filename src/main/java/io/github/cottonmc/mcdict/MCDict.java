@@ -2,6 +2,8 @@ package io.github.cottonmc.mcdict;
 
 import io.github.cottonmc.mcdict.api.DictInitializer;
 import net.fabricmc.api.ModInitializer;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
 import net.fabricmc.fabric.api.resource.ResourceManagerHelper;
 import net.fabricmc.loader.api.FabricLoader;
 import net.minecraft.resource.ResourceType;
@@ -21,6 +23,10 @@ public class MCDict implements ModInitializer {
 		entrypoints.forEach(DictInitializer::initDictTypes);
 		entrypoints.forEach(DictInitializer::registerDicts);
 		ResourceManagerHelper.get(ResourceType.SERVER_DATA).registerReloadListener(new PackDictLoader());
+		ServerTickEvents.START_SERVER_TICK.register(server -> PackDictLoader.tick());
+		//Data packs and their tags are already loaded by the time the server starts, so dicts are ready before the world loads
+		ServerLifecycleEvents.SERVER_STARTING.register(server -> PackDictLoader.onReloadComplete(true));
+		ServerLifecycleEvents.END_DATA_PACK_RELOAD.register((server, resourceManager, success) -> PackDictLoader.onReloadComplete(success));
 		StaticDictLoader.load();
 	}
 }
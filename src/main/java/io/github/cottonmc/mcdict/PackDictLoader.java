@@ -5,6 +5,7 @@ import blue.endless.jankson.JsonObject;
 import blue.endless.jankson.api.SyntaxError;
 import io.github.cottonmc.mcdict.api.Dict;
 import io.github.cottonmc.mcdict.api.DictManager;
+import io.github.cottonmc.mcdict.api.SimpleDict;
 import net.fabricmc.fabric.api.resource.SimpleResourceReloadListener;
 import net.minecraft.resource.Resource;
 import net.minecraft.resource.ResourceManager;
@@ -15,42 +16,67 @@ import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
-import java.util.function.Function;
+import java.util.concurrent.TimeUnit;
 
-public class PackDictLoader implements SimpleResourceReloadListener<Map<String, Map<Identifier, List<JsonObject>>>> {
+public class PackDictLoader implements SimpleResourceReloadListener<Map<String, Map<Identifier, List<DictFile>>>> {
 	private static final String DATA_TYPE = "dicts/";
 	private static final String EXTENSION = ".json5";
+	//Only replaced on the server thread, or before the server starts ticking
+	private static volatile PendingPublish pending;
+	private static volatile int lastPublishTicks = 0;
 
 	@Override
-	public CompletableFuture<Map<String, Map<Identifier, List<JsonObject>>>> load(ResourceManager manager, Profiler profiler, Executor executor) {
+	public CompletableFuture<Map<String, Map<Identifier, List<DictFile>>>> load(ResourceManager manager, Profiler profiler, Executor executor) {
 		return CompletableFuture.supplyAsync(() -> {
-			Jankson.Builder builder = Jankson.builder();
-			for (Function<Jankson.Builder, Jankson.Builder> factory : DictManager.FACTORIES) {
-				factory.apply(builder);
-			}
-			Jankson jankson = builder.build();
-			Map<String, Map<Identifier, List<JsonObject>>> ret = new HashMap<>();
+			Jankson jankson = DictManager.getJankson();
+			Map<String, Map<Identifier, List<DictFile>>> ret = new HashMap<>();
+			//Only used to order packs that the files themselves don't, since grouped packs aren't listed here
+			Map<String, Integer> packOrder = new HashMap<>();
+			manager.streamResourcePacks().forEach(pack -> packOrder.putIfAbsent(pack.getName(), packOrder.size()));
 			for (String key : DictManager.DICT_TYPES.keySet()) {
-				Map<Identifier, List<JsonObject>> values = new HashMap<>();
-				Collection<Identifier> resources = manager.findResources(DATA_TYPE + key, name -> name.endsWith(EXTENSION));
+				Map<Identifier, List<DictFile>> values = new HashMap<>();
+				Collection<Identifier> resources = manager.findResources(DATA_TYPE + key, name -> name.endsWith(EXTENSION) || name.endsWith(BinaryDictFormat.EXTENSION));
+				Map<Identifier, List<Identifier>> filesForDict = new HashMap<>();
 				for (Identifier id : resources) {
-					Identifier newId = new Identifier(id.getNamespace(), id.getPath().substring(DATA_TYPE.length() + key.length() + 1, id.getPath().length() - EXTENSION.length()));
+					String extension = isBinary(id) ? BinaryDictFormat.EXTENSION : EXTENSION;
+					Identifier newId = new Identifier(id.getNamespace(), id.getPath().substring(DATA_TYPE.length() + key.length() + 1, id.getPath().length() - extension.length()));
 					if (!DictManager.DATA_PACK.dicts.get(key).containsKey(newId)) {
 						MCDict.logger.error("[MCDict] Tried to load dict " + newId.toString() + " that wasn't registered");
 						continue;
 					}
+					filesForDict.computeIfAbsent(newId, dictId -> new ArrayList<>()).add(id);
+				}
+				filesForDict.forEach((newId, ids) -> {
+					List<Resource> files;
 					try {
-						Collection<Resource> files = manager.getAllResources(id);
-						List<JsonObject> allVals = new ArrayList<>();
-						for (Resource file : files) {
-							JsonObject json = jankson.load(file.getInputStream());
-							allVals.add(json);
+						List<Resource> json = new ArrayList<>();
+						List<Resource> binary = new ArrayList<>();
+						for (Identifier id : ids) {
+							(isBinary(id) ? binary : json).addAll(manager.getAllResources(id));
 						}
-						values.put(newId, allVals);
-					} catch (IOException | SyntaxError e) {
-						MCDict.logger.error("[MCDict] Failed to load file(s) for dict " + id.toString() + ": " + e.getMessage());
+						files = stackInPackOrder(json, binary, packOrder);
+					} catch (IOException e) {
+						MCDict.logger.error("[MCDict] Failed to load file(s) for dict " + newId.toString() + ": " + e.getMessage());
+						return;
 					}
-				}
+					Dict<?, ?> dict = DictManager.DATA_PACK.dicts.get(key).get(newId);
+					//Each file fails on its own, the same as JSON5 files failing in fromJson
+					List<DictFile> allVals = new ArrayList<>();
+					for (Resource file : files) {
+						try (Resource res = file) {
+							if (!isBinary(res.getId())) {
+								allVals.add(DictFile.fromJson(jankson.load(res.getInputStream())));
+							} else if (dict instanceof SimpleDict) {
+								allVals.add(BinaryDictFormat.read(jankson, (SimpleDict<?, ?>) dict, res.getInputStream()));
+							} else {
+								MCDict.logger.error("[MCDict] Binary dict files can't be loaded for dict {}, as it isn't a SimpleDict", newId.toString());
+							}
+						} catch (IOException | SyntaxError e) {
+							MCDict.logger.error("[MCDict] Failed to load file {} from pack {} for dict {}: {}", file.getId().toString(), file.getResourcePackName(), newId.toString(), e.getMessage());
+						}
+					}
+					values.put(newId, allVals);
+				});
 				ret.put(key, values);
 			}
 			return ret;
@@ -58,32 +84,189 @@ public class PackDictLoader implements SimpleResourceReloadListener<Map<String,
 	}
 
 	@Override
-	public CompletableFuture<Void> apply(Map<String, Map<Identifier, List<JsonObject>>> dicts, ResourceManager manager, Profiler profiler, Executor executor) {
-		return CompletableFuture.runAsync(() -> {
+	public CompletableFuture<Void> apply(Map<String, Map<Identifier, List<DictFile>>> dicts, ResourceManager manager, Profiler profiler, Executor executor) {
+		return CompletableFuture.supplyAsync(() -> {
+			//Build every dict into a fresh snapshot off-thread, so live dicts keep serving their old contents until they're published
+			PendingPublish publish = new PendingPublish();
 			for (String type : dicts.keySet()) {
 				Map<Identifier, Dict<?, ?>> registered = DictManager.DATA_PACK.dicts.get(type);
-				registered.forEach((id, dict) -> dict.clear());
-				Map<Identifier, List<JsonObject>> typeDicts = dicts.get(type);
-				for (Identifier id : typeDicts.keySet()) {
-					Dict<?, ?> dict = registered.get(id);
-					List<JsonObject> jsons = typeDicts.get(id);
-					for (JsonObject json : jsons) {
-						boolean replace = json.getBoolean("replace", false);
-						boolean override = json.getBoolean("override", false);
-						JsonObject vals = json.getObject("values");
-						try {
-							dict.fromJson(replace, override, vals);
-						} catch (SyntaxError e) {
-							MCDict.logger.error("[MCDict] Failed to load {} dict {}: {}", type, id.toString(), e.getMessage());
-						}
+				Map<Identifier, List<DictFile>> typeDicts = dicts.get(type);
+				Map<Identifier, JsonObject> declaredFallbacks = new HashMap<>();
+				for (Map.Entry<Identifier, Dict<?, ?>> entry : registered.entrySet()) {
+					List<DictFile> files = typeDicts.getOrDefault(entry.getKey(), Collections.emptyList());
+					declareFallbacks(entry.getKey(), files, declaredFallbacks);
+					if (entry.getValue() instanceof SimpleDict) {
+						SimpleDict<?, ?> dict = (SimpleDict<?, ?>) entry.getValue();
+						publish.steps.add(buildSnapshot(type, dict, files));
+						publish.dicts.add(dict);
+					} else {
+						//Other dicts can't be snapshotted, so they're cleared and loaded in place on the server thread like before
+						Dict<?, ?> dict = entry.getValue();
+						publish.steps.add(() -> {
+							dict.clear();
+							applyFiles(type, dict, files);
+						});
 					}
 				}
+				publish.steps.add(() -> DictManager.DATA_PACK.linkFallbacks(type, declaredFallbacks));
 			}
-		});
+			//Publishing expands tags, which drops fallback tables, so the tables are built once everything's published
+			for (SimpleDict<?, ?> dict : publish.dicts) {
+				publish.steps.add(dict::compileFallbacks);
+			}
+			return publish;
+		}).thenAcceptAsync(publish -> {
+			//Nothing is published until the reload is done and its tags are installed, see onReloadComplete
+			pending = publish;
+		}, executor);
+	}
+
+	private static <T, V> Runnable buildSnapshot(String type, SimpleDict<T, V> dict, List<DictFile> files) {
+		SimpleDict<T, V> snapshot = dict.createSnapshot();
+		applyFiles(type, snapshot, files);
+		return () -> dict.publish(snapshot);
+	}
+
+	private static void applyFiles(String type, Dict<?, ?> dict, List<DictFile> files) {
+		for (DictFile file : files) {
+			try {
+				file.applyTo(dict);
+			} catch (SyntaxError e) {
+				MCDict.logger.error("[MCDict] Failed to load {} dict {}: {}", type, dict.getId().toString(), e.getMessage());
+			}
+		}
+	}
+
+	//The last file to declare fallbacks wins, and a file with "replace" drops declarations from files before it
+	private static void declareFallbacks(Identifier id, List<DictFile> files, Map<Identifier, JsonObject> declaredFallbacks) {
+		for (DictFile file : files) {
+			if (file.isReplace()) declaredFallbacks.remove(id);
+			if (file.getFallbacks() != null) declaredFallbacks.put(id, file.getFallbacks());
+		}
+	}
+
+	/**
+	 * Run as many pending publish steps as fit in the time budget. Called on the server thread at the start of every tick.
+	 */
+	public static void tick() {
+		PendingPublish publish = pending;
+		if (publish == null || !publish.hasWork()) return;
+		publish.ticks++;
+		if (publish.run(TimeUnit.MICROSECONDS.toNanos(DictManager.getPublishBudget()))) finish(publish);
+	}
+
+	/**
+	 * Start publishing the loaded dicts, now that the reload is done and the new tags are installed.
+	 * With no publish budget, every dict is published right away; otherwise they're published over the next ticks.
+	 * Called on the server thread as the server starts, and after every data pack reload.
+	 * @param success Whether the reload succeeded. If it didn't, the loaded dicts are dropped and the current ones kept.
+	 */
+	public static void onReloadComplete(boolean success) {
+		PendingPublish publish = pending;
+		if (publish == null) return;
+		if (!success) {
+			pending = null;
+			MCDict.logger.warn("[MCDict] Data pack reload failed, keeping the current data pack dicts");
+			return;
+		}
+		publish.reloadComplete = true;
+		if (DictManager.getPublishBudget() <= 0 && publish.run(Long.MAX_VALUE)) finish(publish);
+	}
+
+	private static void finish(PendingPublish publish) {
+		if (pending == publish) pending = null;
+		lastPublishTicks = publish.ticks;
+		MCDict.logger.info("[MCDict] Published {} data pack dicts over {} tick(s)", publish.dicts.size(), publish.ticks);
+	}
+
+	/**
+	 * @return How many server ticks the last data pack reload took to publish all its dicts, or 0 if it didn't wait for ticks.
+	 */
+	public static int getLastPublishTicks() {
+		return lastPublishTicks;
+	}
+
+	/**
+	 * Merge the JSON5 and binary files for a dict into one list in stacking order.
+	 * Each list is already in pack order from getAllResources, so they're only interleaved by where each file's pack falls in the other list.
+	 * @param json Every JSON5 file for the dict, lowest priority first.
+	 * @param binary Every binary file for the dict, lowest priority first.
+	 * @param packOrder The position of each top-level pack, for packs that only one of the lists has.
+	 * @return Every file, lowest priority first. A JSON5 file comes before a binary file from the same pack.
+	 */
+	private static List<Resource> stackInPackOrder(List<Resource> json, List<Resource> binary, Map<String, Integer> packOrder) {
+		List<Resource> ret = new ArrayList<>(json.size() + binary.size());
+		int i = 0;
+		int j = 0;
+		while (i < json.size() && j < binary.size()) {
+			String jsonPack = json.get(i).getResourcePackName();
+			String binaryPack = binary.get(j).getResourcePackName();
+			boolean binaryFirst;
+			if (jsonPack.equals(binaryPack)) {
+				binaryFirst = false;
+			} else if (indexOfPack(binary, jsonPack, j) >= 0) {
+				//The JSON5 file's pack has a binary file further on, so this binary file's pack comes first
+				binaryFirst = true;
+			} else if (indexOfPack(json, binaryPack, i) >= 0) {
+				binaryFirst = false;
+			} else {
+				Integer jsonIndex = packOrder.get(jsonPack);
+				Integer binaryIndex = packOrder.get(binaryPack);
+				binaryFirst = jsonIndex != null && binaryIndex != null && binaryIndex < jsonIndex;
+			}
+			ret.add(binaryFirst ? binary.get(j++) : json.get(i++));
+		}
+		ret.addAll(json.subList(i, json.size()));
+		ret.addAll(binary.subList(j, binary.size()));
+		return ret;
+	}
+
+	private static int indexOfPack(List<Resource> files, String pack, int from) {
+		for (int i = from; i < files.size(); i++) {
+			if (files.get(i).getResourcePackName().equals(pack)) return i;
+		}
+		return -1;
+	}
+
+	private static boolean isBinary(Identifier id) {
+		return id.getPath().endsWith(BinaryDictFormat.EXTENSION);
 	}
 
 	@Override
 	public Identifier getFabricId() {
 		return new Identifier(MCDict.MODID, "dict_loader");
 	}
+
+	/**
+	 * Internal helper class for the steps left to publish a reload's dict snapshots, and how many ticks it's taken so far.
+	 * Only used on the server thread once it's built.
+	 */
+	private static class PendingPublish {
+		private final Queue<Runnable> steps = new ArrayDeque<>();
+		private final List<SimpleDict<?, ?>> dicts = new ArrayList<>();
+		private boolean reloadComplete = false;
+		private int ticks = 0;
+
+		/**
+		 * @return Whether there are steps that can run now. Nothing runs until the reload is complete.
+		 */
+		private boolean hasWork() {
+			return reloadComplete && !steps.isEmpty();
+		}
+
+		/**
+		 * Run steps until the budget runs out. Always runs at least one step if it can, so that a publish can't stall.
+		 * @param budget The time to spend in nanoseconds.
+		 * @return Whether every step has been run.
+		 */
+		private boolean run(long budget) {
+			long start = System.nanoTime();
+			do {
+				Runnable step = reloadComplete ? steps.poll() : null;
+				if (step == null) break;
+				step.run();
+			} while (System.nanoTime() - start < budget);
+			return steps.isEmpty();
+		}
+	}
 }
@@ -6,6 +6,7 @@ import blue.endless.jankson.api.SyntaxError;
 import com.google.common.collect.ImmutableSet;
 import io.github.cottonmc.mcdict.api.Dict;
 import io.github.cottonmc.mcdict.api.DictManager;
+import io.github.cottonmc.mcdict.api.SimpleDict;
 import io.github.cottonmc.staticdata.StaticDataItem;
 import net.fabricmc.loader.api.FabricLoader;
 import net.fabricmc.loader.api.ModContainer;
@@ -13,10 +14,10 @@ import net.minecraft.util.Identifier;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
-import java.util.function.Function;
 import java.util.stream.Stream;
 
 public class StaticDictLoader {
@@ -24,29 +25,34 @@ public class StaticDictLoader {
 	private static final String EXTENSION = ".json5";
 
 	public static void load() {
-		Jankson.Builder builder = Jankson.builder();
-		for (Function<Jankson.Builder, Jankson.Builder> factory : DictManager.FACTORIES) {
-			factory.apply(builder);
-		}
-		Jankson jankson = builder.build();
+		Jankson jankson = DictManager.getJankson();
 		for (String key : DictManager.DICT_TYPES.keySet()) {
 			Map<Identifier, Dict<?, ?>> dicts = DictManager.STATIC_DATA.dicts.get(key);
+			Map<Identifier, JsonObject> declaredFallbacks = new HashMap<>();
 			Set<StaticDataItem> data = getContentInDirectory("dicts/" + key);
 			for (StaticDataItem item : data) {
 				Identifier id = item.getIdentifier();
-				Identifier newId = new Identifier(id.getNamespace(), id.getPath().substring(DATA_TYPE.length() + key.length() + 1, id.getPath().length() - EXTENSION.length()));
+				boolean binary = id.getPath().endsWith(BinaryDictFormat.EXTENSION);
+				String extension = binary ? BinaryDictFormat.EXTENSION : EXTENSION;
+				Identifier newId = new Identifier(id.getNamespace(), id.getPath().substring(DATA_TYPE.length() + key.length() + 1, id.getPath().length() - extension.length()));
 				if (!dicts.containsKey(newId)) {
 					MCDict.logger.error("[MCDict] Tried to load dict " + newId.toString() + " that wasn't registered");
 					continue;
 				}
 				try {
 					Dict<?, ?> dict = dicts.get(newId);
-					JsonObject json = jankson.load(item.createInputStream());
-					boolean replace = json.getBoolean("replace", false);
-					boolean override = json.getBoolean("override", false);
-					JsonObject vals = json.getObject("values");
+					if (binary && !(dict instanceof SimpleDict)) {
+						MCDict.logger.error("[MCDict] Binary dict files can't be loaded for dict {}, as it isn't a SimpleDict", newId.toString());
+						continue;
+					}
+					DictFile file;
+					try (InputStream in = item.createInputStream()) {
+						file = binary ? BinaryDictFormat.read(jankson, (SimpleDict<?, ?>) dict, in) : DictFile.fromJson(jankson.load(in));
+					}
+					if (file.isReplace()) declaredFallbacks.remove(newId);
+					if (file.getFallbacks() != null) declaredFallbacks.put(newId, file.getFallbacks());
 					try {
-						dict.fromJson(replace, override, vals);
+						file.applyTo(dict);
 					} catch (SyntaxError e) {
 						MCDict.logger.error("[MCDict] Failed to load {} dict {}: {}", key, id.toString(), e.getMessage());
 					}
@@ -54,6 +60,7 @@ public class StaticDictLoader {
 					MCDict.logger.error("[MCDict] Failed to load file(s) for dict " + id.toString() + ": " + e.getMessage());
 				}
 			}
+			DictManager.STATIC_DATA.linkFallbacks(key, declaredFallbacks);
 		}
 	}
 
@@ -5,7 +5,9 @@ import blue.endless.jankson.api.SyntaxError;
 import net.minecraft.tag.Tag;
 import net.minecraft.util.Identifier;
 
+import javax.annotation.Nullable;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
 
@@ -39,12 +41,55 @@ public interface Dict<T, V> {
 	V get(T entry);
 
 	/**
-	 * @return All the entries in this dict.
+	 * Get a value, falling back through this dict's fallback chain and then its default value.
+	 * The chain is compiled into a single lookup table, so this costs the same as {@link #get(Object)}.
+	 * Dicts without fallback support only check themselves.
+	 * @param entry The entry to get for.
+	 * @return The value for this entry in this dict or the first fallback that has one, or the default value.
+	 */
+	@Nullable
+	default V getOrFallback(T entry) {
+		return contains(entry) ? get(entry) : null;
+	}
+
+	/**
+	 * Set the dicts to check, in order, for entries this dict has no value for.
+	 * @param fallbacks The dicts to fall back to. Only their own values are used, not their fallbacks.
+	 * @param defaultValue The value to use if no dict in the chain has a value, or null.
+	 * @throws UnsupportedOperationException If this dict doesn't support fallbacks.
+	 */
+	default void setFallbacks(List<Dict<T, V>> fallbacks, @Nullable V defaultValue) {
+		throw new UnsupportedOperationException("Dict " + getId().toString() + " does not support fallbacks");
+	}
+
+	/**
+	 * Set the value for an entry, replacing any existing value.
+	 * @param entry The entry to set a value for.
+	 * @param value The value to set.
+	 * @throws UnsupportedOperationException If this dict can't be changed outside of loading.
+	 */
+	default void put(T entry, V value) {
+		throw new UnsupportedOperationException("Dict " + getId().toString() + " can't be changed outside of loading");
+	}
+
+	/**
+	 * Remove the value for an entry, if there is one.
+	 * @param entry The entry to remove the value for.
+	 * @return The value that was removed, or null.
+	 * @throws UnsupportedOperationException If this dict can't be changed outside of loading.
+	 */
+	@Nullable
+	default V remove(T entry) {
+		throw new UnsupportedOperationException("Dict " + getId().toString() + " can't be changed outside of loading");
+	}
+
+	/**
+	 * @return All the entries in this dict, as a read-only view. Use {@link #put(Object, Object)} and {@link #remove(Object)} to change them.
 	 */
 	Collection<T> keys();
 
 	/**
-	 * @return A map of all the entries and values in this dict.
+	 * @return A read-only view of all the entries and values in this dict. Use {@link #put(Object, Object)} and {@link #remove(Object)} to change them.
 	 */
 	Map<T, V> values();
 
@@ -61,6 +106,7 @@ public interface Dict<T, V> {
 
 	/**
 	 * Convert the set of entries to a vanilla Tag. Not yet usable as an actual tag, TODO.
+	 * The tag is cached, and only rebuilt after the dict changes.
 	 * @return A tag of type T containing all the entries in this dict.
 	 */
 	Tag<T> toTag();
@@ -1,7 +1,12 @@
 package io.github.cottonmc.mcdict.api;
 
 import blue.endless.jankson.Jankson;
+import blue.endless.jankson.JsonArray;
+import blue.endless.jankson.JsonElement;
+import blue.endless.jankson.JsonObject;
+import blue.endless.jankson.JsonPrimitive;
 import io.github.cottonmc.mcdict.MCDict;
+import net.fabricmc.fabric.api.event.registry.RegistryIdRemapCallback;
 import net.fabricmc.fabric.mixin.tag.extension.AccessorFluidTags;
 import net.minecraft.block.Block;
 import net.minecraft.entity.EntityType;
@@ -9,13 +14,11 @@ import net.minecraft.fluid.Fluid;
 import net.minecraft.item.Item;
 import net.minecraft.tag.*;
 import net.minecraft.util.Identifier;
+import net.minecraft.util.InvalidIdentifierException;
 import net.minecraft.util.registry.Registry;
 
 import javax.annotation.Nullable;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
@@ -23,10 +26,16 @@ public class DictManager {
 	public static final Map<String, DictInfo<?>> DICT_TYPES = new HashMap<>();
 	public static final List<Function<Jankson.Builder, Jankson.Builder>> FACTORIES = new ArrayList<>();
 
+	//Rebuilt whenever FACTORIES has changed size, so factories added to it directly still get picked up
+	private static Jankson jankson;
+	private static int janksonFactoryCount = -1;
+	private static volatile long publishBudget = Long.getLong("mcdict.publishBudgetMicros", 0L);
+
 	public static final DictManager DATA_PACK = new DictManager();
 	public static final DictManager STATIC_DATA = new DictManager();
 
 	public Map<String, Map<Identifier, Dict<?, ?>>> dicts = new HashMap<>();
+	private final Map<String, Map<Identifier, FallbackInfo<?>>> fallbacks = new HashMap<>();
 
 	private DictManager() {
 		innerRegisterDictType("blocks", Registry.BLOCK, BlockTags::getTagGroup);
@@ -53,7 +62,20 @@ public class DictManager {
 
 	private <T> void innerRegisterDictType(String subfolder, Registry<T> registry, Supplier<TagGroup<T>> tagGroup) {
 		dicts.put(subfolder, new HashMap<>());
-		DICT_TYPES.putIfAbsent(subfolder, new DictInfo<>(registry, tagGroup));
+		fallbacks.put(subfolder, new HashMap<>());
+		if (!DICT_TYPES.containsKey(subfolder)) {
+			DICT_TYPES.put(subfolder, new DictInfo<>(registry, tagGroup));
+			RegistryIdRemapCallback.event(registry).register(state -> onRemap(subfolder));
+		}
+	}
+
+	//Raw IDs change when registry sync remaps a registry, so any dict keyed by them has to rebuild
+	private static void onRemap(String type) {
+		for (DictManager manager : new DictManager[]{DATA_PACK, STATIC_DATA}) {
+			for (Dict<?, ?> dict : manager.dicts.get(type).values()) {
+				if (dict instanceof SimpleDict) ((SimpleDict<?, ?>) dict).clearRawIdCache();
+			}
+		}
 	}
 
 	/**
@@ -61,7 +83,41 @@ public class DictManager {
 	 * @param factory A function that takes the passed Jankson builder, adds your serializers and deserializers, and returns the same Jankson builder.
 	 */
 	public static void addValueFactory(Function<Jankson.Builder, Jankson.Builder> factory) {
-		FACTORIES.add(factory);
+		synchronized (DictManager.class) {
+			FACTORIES.add(factory);
+		}
+	}
+
+	/**
+	 * @return A Jankson instance with every value factory applied. Built once, and only rebuilt after new factories are added.
+	 */
+	public static synchronized Jankson getJankson() {
+		if (jankson == null || janksonFactoryCount != FACTORIES.size()) {
+			Jankson.Builder builder = Jankson.builder();
+			for (Function<Jankson.Builder, Jankson.Builder> factory : FACTORIES) {
+				factory.apply(builder);
+			}
+			jankson = builder.build();
+			janksonFactoryCount = FACTORIES.size();
+		}
+		return jankson;
+	}
+
+	/**
+	 * Set how long data pack dicts may spend being published each server tick after a reload.
+	 * Until a dict is published it keeps serving its old contents, tag entries included, so with a budget set some dicts may be a few ticks behind others.
+	 * Can also be set with the mcdict.publishBudgetMicros system property.
+	 * @param micros The time budget per tick in microseconds, or 0 to publish every dict as soon as the reload is done.
+	 */
+	public static void setPublishBudget(long micros) {
+		publishBudget = Math.max(micros, 0L);
+	}
+
+	/**
+	 * @return The time budget per tick for publishing data pack dicts in microseconds, or 0 if they're published as soon as the reload is done.
+	 */
+	public static long getPublishBudget() {
+		return publishBudget;
 	}
 
 	/**
@@ -131,10 +187,103 @@ public class DictManager {
 		}
 		Map<Identifier, Dict<?, ?>> dictMap = dicts.get(type);
 		Dict<?, ?> ret = dictMap.get(id);
-		if (ret.getType() == valueType) return (Dict<T, V>) ret;
+		if (ret != null && ret.getType() == valueType) return (Dict<T, V>) ret;
 		else return null;
 	}
 
+	/**
+	 * Declare a fallback chain for a dict. Dict files can replace this with their own "fallback" and "default" keys.
+	 * Takes effect the next time dicts are loaded.
+	 * @param type The type of registered object the dicts are for.
+	 * @param id The ID of the dict to add fallbacks to.
+	 * @param valueType The class of value stored in the dicts.
+	 * @param defaultValue The value to use if no dict in the chain has a value, or null.
+	 * @param fallbackIds The IDs of the dicts of the same type and value type to fall back to, in order.
+	 * @param <V> The type of value stored in the dicts.
+	 */
+	public <V> void registerFallbacks(String type, Identifier id, Class<V> valueType, @Nullable V defaultValue, Identifier... fallbackIds) {
+		if (!fallbacks.containsKey(type)) {
+			MCDict.logger.error("[MCDict] Could not register fallbacks for dict {}, as class {} does not have a dict type", id.toString(), type);
+			return;
+		}
+		fallbacks.get(type).put(id, new FallbackInfo<>(valueType, Arrays.asList(fallbackIds), defaultValue));
+	}
+
+	/**
+	 * Link every dict of a type to its fallback chain. Doesn't build the flattened fallback tables,
+	 * which are built by {@link SimpleDict#compileFallbacks()} or on first lookup.
+	 * Called by the loaders once all dicts of the type have been loaded.
+	 * @param type The type of registered object to link dicts for.
+	 * @param declared The last dict file for each dict that declared a "fallback" or "default", which take priority over registered fallbacks.
+	 */
+	public void linkFallbacks(String type, Map<Identifier, JsonObject> declared) {
+		Map<Identifier, FallbackInfo<?>> registered = fallbacks.get(type);
+		dicts.get(type).forEach((id, dict) -> {
+			JsonObject json = declared.get(id);
+			if (json != null) {
+				linkFallbacks(type, dict, parseFallbacks(id, dict.getType(), json));
+			} else {
+				linkFallbacks(type, dict, registered.get(id));
+			}
+		});
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T, V> void linkFallbacks(String type, Dict<T, V> dict, @Nullable FallbackInfo<?> info) {
+		if (info != null && info.valueType != dict.getType()) {
+			MCDict.logger.error("[MCDict] Could not link fallbacks for dict {}, as they are not for value type {}", dict.getId().toString(), dict.getType().getName());
+			info = null;
+		}
+		if (info == null) {
+			//Only our own dicts can have a chain left over from the last load; other dicts may not support fallbacks at all
+			if (dict instanceof SimpleDict) dict.setFallbacks(Collections.emptyList(), null);
+			return;
+		}
+		List<Dict<T, V>> chain = new ArrayList<>();
+		for (Identifier fallbackId : info.chain) {
+			Dict<T, V> fallback = getDict(type, dict.getType(), fallbackId);
+			if (fallback == null) {
+				MCDict.logger.error("[MCDict] Dict {} falls back to dict {} that doesn't exist for dict type {} and value type {}", dict.getId().toString(), fallbackId.toString(), type, dict.getType().getName());
+			} else if (fallback != dict) {
+				chain.add(fallback);
+			}
+		}
+		try {
+			dict.setFallbacks(chain, (V) info.defaultValue);
+		} catch (UnsupportedOperationException e) {
+			MCDict.logger.error("[MCDict] Could not link fallbacks for dict {}: {}", dict.getId().toString(), e.getMessage());
+		}
+	}
+
+	private static <V> FallbackInfo<V> parseFallbacks(Identifier id, Class<V> valueType, JsonObject json) {
+		List<Identifier> chain = new ArrayList<>();
+		JsonElement fallback = json.get("fallback");
+		if (fallback instanceof JsonArray) {
+			for (JsonElement elem : (JsonArray) fallback) {
+				if (elem instanceof JsonPrimitive) addFallback(id, chain, ((JsonPrimitive) elem).asString());
+			}
+		} else if (fallback instanceof JsonPrimitive) {
+			addFallback(id, chain, ((JsonPrimitive) fallback).asString());
+		}
+		JsonElement defaultElem = json.get("default");
+		V defaultValue = null;
+		if (defaultElem != null) {
+			defaultValue = ValueDecoders.get(valueType).decode(defaultElem);
+			if (defaultValue == null) {
+				MCDict.logger.error("[MCDict] Default value {} for dict {} could not be parsed into type {}", defaultElem.toJson(false, false), id.toString(), valueType.getName());
+			}
+		}
+		return new FallbackInfo<>(valueType, chain, defaultValue);
+	}
+
+	private static void addFallback(Identifier id, List<Identifier> chain, String fallbackId) {
+		try {
+			chain.add(new Identifier(fallbackId));
+		} catch (InvalidIdentifierException e) {
+			MCDict.logger.error("[MCDict] Dict {} falls back to {}, which is not a valid ID", id.toString(), fallbackId);
+		}
+	}
+
 	/**
 	 * Get a block dict.
 	 * @param valueType The class of value to get a dict for.
@@ -194,4 +343,20 @@ public class DictManager {
 			this.group = group;
 		}
 	}
+
+	/**
+	 * Internal helper class for storing a declared fallback chain before the dicts in it are resolved.
+	 * @param <V> The type of value stored in the dicts.
+	 */
+	private static class FallbackInfo<V> {
+		private Class<V> valueType;
+		private List<Identifier> chain;
+		private V defaultValue;
+
+		private FallbackInfo(Class<V> valueType, List<Identifier> chain, @Nullable V defaultValue) {
+			this.valueType = valueType;
+			this.chain = chain;
+			this.defaultValue = defaultValue;
+		}
+	}
 }
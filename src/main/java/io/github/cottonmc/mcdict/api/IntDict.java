@@ -11,7 +11,7 @@ import java.util.*;
 import java.util.function.Supplier;
 
 public class IntDict<T> extends SimpleDict<T, Integer> {
-	private final Object2IntMap<T> values;
+	private Object2IntMap<T> values;
 
 	public IntDict(Identifier id, Registry<T> registry, Supplier<TagGroup<T>> group) {
 		super(id, Integer.class, registry, group);
@@ -20,7 +20,7 @@ public class IntDict<T> extends SimpleDict<T, Integer> {
 	
 	@Override
 	protected void loadPendingTags() {
-		if (this.pendingTags != null && !this.pendingTags.isEmpty()) {
+		if (!this.deferTags && this.pendingTags != null && !this.pendingTags.isEmpty()) {
 			List<Map<Identifier, Integer>> list = new ArrayList<>();
 			
 			this.pendingTags.forEach((tags, override) -> {
@@ -28,6 +28,7 @@ public class IntDict<T> extends SimpleDict<T, Integer> {
 					tags.forEach((tagId, value) -> {
 						Tag<T> tag = group.get().getTag(tagId);
 						if (tag != null) {
+							invalidateCaches();
 							for (T t : tag.values()) {
 								if (!values.containsKey(t) || override) values.put(t, value.intValue());
 							}
@@ -44,21 +45,35 @@ public class IntDict<T> extends SimpleDict<T, Integer> {
 	}
 
 	@Override
-	public boolean contains(T entry) {
-		this.loadPendingTags();
-		return values.containsKey(entry);
+	protected Map<T, Integer> rawValues() {
+		return values;
 	}
 
 	@Override
 	public Collection<T> keys() {
 		this.loadPendingTags();
-		return values.keySet();
+		return Collections.unmodifiableSet(values.keySet());
 	}
 
 	@Override
 	public Map<T, Integer> values() {
 		this.loadPendingTags();
-		return values;
+		return Collections.unmodifiableMap(values);
+	}
+
+	@Override
+	public IntDict<T> createSnapshot() {
+		IntDict<T> snapshot = new IntDict<>(getId(), registry, group);
+		snapshot.deferTags = true;
+		return snapshot;
+	}
+
+	@Override
+	public void publish(SimpleDict<T, Integer> snapshot) {
+		if (!(snapshot instanceof IntDict)) throw new IllegalArgumentException("Dict " + getId().toString() + " can't publish a snapshot it didn't create");
+		//Expands the snapshot's tags into its own map first
+		super.publish(snapshot);
+		this.values = ((IntDict<T>) snapshot).values;
 	}
 
 	@Override
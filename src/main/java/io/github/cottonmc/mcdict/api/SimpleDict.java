@@ -1,24 +1,38 @@
 package io.github.cottonmc.mcdict.api;
 
+import blue.endless.jankson.JsonElement;
 import blue.endless.jankson.JsonObject;
 import blue.endless.jankson.JsonPrimitive;
 import blue.endless.jankson.api.SyntaxError;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import net.minecraft.tag.Tag;
 import net.minecraft.tag.TagGroup;
 import net.minecraft.util.Identifier;
 import net.minecraft.util.registry.Registry;
 
+import javax.annotation.Nullable;
 import java.util.*;
 import java.util.function.Supplier;
 
 public class SimpleDict<T, V> implements Dict<T, V> {
 	private final Identifier id;
 	private final Class<V> type;
-	private final Map<T, V> values;
+	private Map<T, V> values;
 	protected final Map<Map<Identifier, V>, Boolean> pendingTags;
+	//Set on snapshots, which are built before the new tags are installed, so that tag entries don't get expanded against the old ones
+	protected boolean deferTags = false;
 	protected Registry<T> registry;
 	protected Supplier<TagGroup<T>> group;
+	//Rebuilt lazily from the current keys whenever the dict changes
+	private Tag<T> cachedTag;
+	private BitSet keyBits;
+	private List<Dict<T, V>> fallbacks = ImmutableList.of();
+	private V defaultValue;
+	//Flattened view of this dict over its fallbacks, rebuilt lazily whenever any dict in the chain changes
+	private Map<T, V> resolved;
+	private final Set<SimpleDict<T, ?>> dependents = Collections.newSetFromMap(new IdentityHashMap<>());
 
 	public SimpleDict(Identifier id, Class<V> type, Registry<T> registry, Supplier<TagGroup<T>> group) {
 		this.id = id;
@@ -29,9 +43,50 @@ public class SimpleDict<T, V> implements Dict<T, V> {
 		this.pendingTags = new HashMap<>();
 	}
 
+	/**
+	 * Drop the cached tag, raw ID bitset and fallback tables that use this dict. Must be called whenever its contents may have changed.
+	 */
+	protected void invalidateCaches() {
+		this.cachedTag = null;
+		this.keyBits = null;
+		this.resolved = null;
+		for (SimpleDict<T, ?> dependent : dependents) {
+			dependent.resolved = null;
+		}
+	}
+
+	/**
+	 * Drop the raw ID bitset only, for when the registry's raw IDs get remapped by registry sync.
+	 */
+	void clearRawIdCache() {
+		this.keyBits = null;
+	}
+
+	/**
+	 * @return The backing map of this dict, without invalidating any caches. Never hand this out.
+	 */
+	protected Map<T, V> rawValues() {
+		return values;
+	}
+
+	/**
+	 * @return A bitset of the raw registry IDs of every key in this dict, built on first use after a change.
+	 */
+	protected BitSet getKeyBits() {
+		if (keyBits == null) {
+			BitSet bits = new BitSet();
+			for (T t : keys()) {
+				int rawId = registry.getRawId(t);
+				if (rawId >= 0) bits.set(rawId);
+			}
+			keyBits = bits;
+		}
+		return keyBits;
+	}
+
 	//This is a workaround for tags failing to load when a dict is loaded
 	protected void loadPendingTags() {
-		if (!this.pendingTags.isEmpty()) {
+		if (!this.deferTags && !this.pendingTags.isEmpty()) {
 			List<Map<Identifier, V>> list = new ArrayList<>();
 			
 			this.pendingTags.forEach((tags, override) -> {
@@ -39,6 +94,7 @@ public class SimpleDict<T, V> implements Dict<T, V> {
 					tags.forEach((tagId, value) -> {
 						Tag<T> tag = group.get().getTag(tagId);
 						if (tag != null) {
+							invalidateCaches();
 							for (T t : tag.values()) {
 								if (!values.containsKey(t) || override) values.put(t, value);
 							}
@@ -57,13 +113,15 @@ public class SimpleDict<T, V> implements Dict<T, V> {
 	@Override
 	public void clear() {
 		this.pendingTags.clear();
-		values().clear();
+		rawValues().clear();
+		invalidateCaches();
 	}
 
 	@Override
 	public boolean contains(T entry) {
 		this.loadPendingTags();
-		return values.containsKey(entry);
+		int rawId = registry.getRawId(entry);
+		return rawId >= 0 && getKeyBits().get(rawId);
 	}
 
 	@Override
@@ -71,16 +129,78 @@ public class SimpleDict<T, V> implements Dict<T, V> {
 		return type;
 	}
 
+	@Override
+	@Nullable
+	@SuppressWarnings("unchecked")
+	public V getOrFallback(T entry) {
+		//Any dict in the chain resolving its tags invalidates the table, so it gets rebuilt below
+		this.loadPendingTags();
+		for (Dict<T, V> fallback : fallbacks) {
+			if (fallback instanceof SimpleDict) ((SimpleDict<T, V>) fallback).loadPendingTags();
+		}
+		compileFallbacks();
+		V value = resolved.get(entry);
+		return value != null ? value : defaultValue;
+	}
+
+	/**
+	 * Build the flattened table of this dict over its fallbacks, if it isn't built already. Doesn't expand any pending tags.
+	 */
+	@SuppressWarnings("unchecked")
+	public void compileFallbacks() {
+		if (resolved != null) return;
+		if (fallbacks.isEmpty()) {
+			resolved = rawValues();
+			return;
+		}
+		Map<T, V> table = new HashMap<>();
+		for (Dict<T, V> fallback : Lists.reverse(fallbacks)) {
+			table.putAll(fallback instanceof SimpleDict ? ((SimpleDict<T, V>) fallback).rawValues() : fallback.values());
+		}
+		table.putAll(rawValues());
+		resolved = table;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public void setFallbacks(List<Dict<T, V>> fallbacks, @Nullable V defaultValue) {
+		for (Dict<T, V> fallback : this.fallbacks) {
+			if (fallback instanceof SimpleDict) ((SimpleDict<T, V>) fallback).dependents.remove(this);
+		}
+		this.fallbacks = ImmutableList.copyOf(fallbacks);
+		this.defaultValue = defaultValue;
+		for (Dict<T, V> fallback : this.fallbacks) {
+			if (fallback instanceof SimpleDict) ((SimpleDict<T, V>) fallback).dependents.add(this);
+		}
+		this.resolved = null;
+	}
+
+	@Override
+	public void put(T entry, V value) {
+		this.loadPendingTags();
+		rawValues().put(entry, value);
+		invalidateCaches();
+	}
+
+	@Override
+	@Nullable
+	public V remove(T entry) {
+		this.loadPendingTags();
+		V removed = rawValues().remove(entry);
+		invalidateCaches();
+		return removed;
+	}
+
 	@Override
 	public Collection<T> keys() {
 		this.loadPendingTags();
-		return values.keySet();
+		return Collections.unmodifiableSet(values.keySet());
 	}
 
 	@Override
 	public Map<T, V> values() {
 		this.loadPendingTags();
-		return values;
+		return Collections.unmodifiableMap(values);
 	}
 
 	@Override
@@ -100,19 +220,57 @@ public class SimpleDict<T, V> implements Dict<T, V> {
 		return id;
 	}
 
+	/**
+	 * @return The registry which entries in this dict are registered to.
+	 */
+	public Registry<T> getRegistry() {
+		return registry;
+	}
+
 	@Override
 	public Tag<T> toTag() {
 		//Identifier newId = new Identifier(id.getNamespace(), "dict/" + id.getPath());
-		return Tag.of(values().keySet());
+		this.loadPendingTags();
+		if (cachedTag == null) cachedTag = Tag.of(ImmutableSet.copyOf(keys()));
+		return cachedTag;
+	}
+
+	/**
+	 * Create an empty, unregistered dict of the same ID and types, to build new contents into without touching this dict.
+	 * Its tag entries stay pending until it's published, since the new tags may not be installed yet.
+	 * @return The new snapshot dict.
+	 */
+	public SimpleDict<T, V> createSnapshot() {
+		SimpleDict<T, V> snapshot = new SimpleDict<>(id, type, registry, group);
+		snapshot.deferTags = true;
+		return snapshot;
+	}
+
+	/**
+	 * Expand the snapshot's tag entries, then replace the contents of this dict with the snapshot's. Fallbacks are kept, not copied from the snapshot.
+	 * Call once the new tags are installed, so that this dict goes straight from its old contents to the complete new ones.
+	 * @param snapshot A dict made by {@link #createSnapshot()} on this dict. It shouldn't be used afterwards.
+	 */
+	public void publish(SimpleDict<T, V> snapshot) {
+		snapshot.deferTags = false;
+		snapshot.loadPendingTags();
+		this.values = snapshot.values;
+		this.pendingTags.clear();
+		this.pendingTags.putAll(snapshot.pendingTags);
+		invalidateCaches();
 	}
 
 	//TODO: libcd condition support?
 	@Override
 	public void fromJson(boolean replace, boolean override, JsonObject entries) throws SyntaxError {
-		Map<T, V> vals = values();
+		this.loadPendingTags();
+		Map<T, V> vals = rawValues();
+		invalidateCaches();
 		if (replace) vals.clear();
-		for (String key : entries.keySet()) {
-			V value = entries.get(type, key);
+		ValueDecoders.Decoder<V> decoder = ValueDecoders.get(type);
+		for (Map.Entry<String, JsonElement> json : entries.entrySet()) {
+			String key = json.getKey();
+			V value = decoder.decode(json.getValue());
 			if (value == null) {
 				throw new SyntaxError("Dict value for entry " + key + " could not be parsed into type " + type.getName());
 			}
@@ -136,6 +294,30 @@ public class SimpleDict<T, V> implements Dict<T, V> {
 		}
 	}
 
+	/**
+	 * Apply entries that have already been decoded, following the same rules as {@link #fromJson(boolean, boolean, JsonObject)}.
+	 * @param replace Whether the dict should be cleared before these entries are applied.
+	 * @param override Whether these entries should override existing dict values for the same entry.
+	 * @param entries Values for registered objects.
+	 * @param tagEntries Values for tags, by tag ID. Expanded once tags are available, like tag entries in JSON.
+	 */
+	public void fromEntries(boolean replace, boolean override, Map<T, V> entries, Map<Identifier, V> tagEntries) {
+		this.loadPendingTags();
+		Map<T, V> vals = rawValues();
+		invalidateCaches();
+		if (replace) vals.clear();
+		tagEntries.forEach((tagId, value) -> {
+			Map<Identifier, V> pendingTagsMap = new HashMap<>();
+			pendingTagsMap.put(tagId, value);
+			pendingTags.put(pendingTagsMap, override);
+		});
+		if (override) {
+			vals.putAll(entries);
+		} else {
+			entries.forEach(vals::putIfAbsent);
+		}
+	}
+
 	@Override
 	public JsonObject toJson() {
 		JsonObject json = new JsonObject();
@@ -0,0 +1,107 @@
+package io.github.cottonmc.mcdict.api;
+
+import blue.endless.jankson.Jankson;
+import blue.endless.jankson.JsonElement;
+import blue.endless.jankson.JsonPrimitive;
+import blue.endless.jankson.api.Marshaller;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.InvalidIdentifierException;
+
+import javax.annotation.Nullable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Decoders from JSON dict values to dict value types. Each decoder is built once per value class and kept across reloads,
+ * so decoding an entry doesn't go through a lookup of Jankson's deserializers every time.
+ */
+public class ValueDecoders {
+	private static final Map<Class<?>, Decoder<?>> DECODERS = new ConcurrentHashMap<>();
+	//The Jankson instance the decoders were built with, so they're all rebuilt once it changes
+	private static volatile Jankson builtWith;
+
+	/**
+	 * Turns a JSON value into a dict value.
+	 * @param <V> The type of value to decode.
+	 */
+	@FunctionalInterface
+	public interface Decoder<V> {
+		/**
+		 * @param elem The JSON value to decode.
+		 * @return The decoded value, or null if it couldn't be decoded.
+		 */
+		@Nullable
+		V decode(JsonElement elem);
+	}
+
+	/**
+	 * Get the decoder for a value type, building it if needed.
+	 * @param type The class of value to decode.
+	 * @param <V> The type of value to decode.
+	 * @return The decoder for this value type.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <V> Decoder<V> get(Class<V> type) {
+		Jankson jankson = DictManager.getJankson();
+		if (jankson != builtWith) {
+			DECODERS.clear();
+			builtWith = jankson;
+		}
+		return (Decoder<V>) DECODERS.computeIfAbsent(type, key -> create(key, jankson));
+	}
+
+	//Primitives and common types read the JSON primitive directly, and only go to Jankson if it's not the expected kind
+	@SuppressWarnings("unchecked")
+	private static <V> Decoder<V> create(Class<V> type, Jankson jankson) {
+		Marshaller marshaller = jankson.getMarshaller();
+		Decoder<V> fallback = elem -> marshaller.marshall(type, elem);
+		if (type == Integer.class) {
+			return (Decoder<V>) number(Number::intValue, (Decoder<Integer>) fallback);
+		} else if (type == Long.class) {
+			return (Decoder<V>) number(Number::longValue, (Decoder<Long>) fallback);
+		} else if (type == Short.class) {
+			return (Decoder<V>) number(Number::shortValue, (Decoder<Short>) fallback);
+		} else if (type == Byte.class) {
+			return (Decoder<V>) number(Number::byteValue, (Decoder<Byte>) fallback);
+		} else if (type == Float.class) {
+			return (Decoder<V>) number(Number::floatValue, (Decoder<Float>) fallback);
+		} else if (type == Double.class) {
+			return (Decoder<V>) number(Number::doubleValue, (Decoder<Double>) fallback);
+		} else if (type == Boolean.class || type == String.class) {
+			return elem -> {
+				if (elem instanceof JsonPrimitive) {
+					Object value = ((JsonPrimitive) elem).getValue();
+					if (type.isInstance(value)) return (V) value;
+				}
+				return fallback.decode(elem);
+			};
+		} else if (type == Identifier.class) {
+			return elem -> {
+				if (elem instanceof JsonPrimitive && ((JsonPrimitive) elem).getValue() instanceof String) {
+					try {
+						return (V) new Identifier((String) ((JsonPrimitive) elem).getValue());
+					} catch (InvalidIdentifierException e) {
+						return null;
+					}
+				}
+				return fallback.decode(elem);
+			};
+		}
+		return fallback;
+	}
+
+	private static <V> Decoder<V> number(NumberDecoder<V> convert, Decoder<V> fallback) {
+		return elem -> {
+			if (elem instanceof JsonPrimitive) {
+				Object value = ((JsonPrimitive) elem).getValue();
+				if (value instanceof Number) return convert.decode((Number) value);
+			}
+			return fallback.decode(elem);
+		};
+	}
+
+	@FunctionalInterface
+	private interface NumberDecoder<V> {
+		V decode(Number value);
+	}
+}